@@ -18,6 +18,7 @@ public class Activator implements BundleActivator {
         registrationList.add(context.registerService(XrplGenerateWalletTool.class.getName(), new XrplGenerateWalletTool(), null));
         registrationList.add(context.registerService(XrplSendTransactionTool.class.getName(), new XrplSendTransactionTool(), null));
         registrationList.add(context.registerService(XrplWalletLoadBinder.class.getName(), new XrplWalletLoadBinder(), null));
+        registrationList.add(context.registerService(XrplReencryptSeedTool.class.getName(), new XrplReencryptSeedTool(), null));
     }
 
     @Override
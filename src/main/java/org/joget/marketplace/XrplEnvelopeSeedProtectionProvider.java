@@ -0,0 +1,287 @@
+package org.joget.marketplace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.joget.commons.util.LogUtil;
+import org.joget.commons.util.SecurityUtil;
+
+/*
+    AES-GCM envelope encryption for wallet seeds.
+
+    Each seed is encrypted with a data key, and the data key is wrapped by a key-encryption key (KEK) held in a local PKCS12 keystore.
+    Protected value format: ENVELOPE_PREFIX + base64(wrapped data key) + ":" + base64(iv + ciphertext)
+
+    Data keys are cached in memory, so the KEK is only touched when a data key is rotated (encrypt) or first seen (decrypt).
+
+    A new KEK is only generated when createIfMissing is set (encrypting tools). Decrypting with a fresh KEK would make
+    every stored seed unreadable, so a missing keystore is an error otherwise.
+*/
+public class XrplEnvelopeSeedProtectionProvider implements XrplSeedProtectionProvider {
+
+    public static final String ENVELOPE_PREFIX = "XRPLENV1:";
+
+    public static final String KEK_ALIAS = "xrpl-seed-kek";
+
+    private static final String KEYSTORE_TYPE = "PKCS12";
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int AES_KEY_SIZE_BITS = 256;
+    private static final int GCM_IV_LENGTH_BYTES = 12;
+    private static final int GCM_TAG_LENGTH_BITS = 128;
+
+    //Rotate the active data key after this many seeds or this much time, whichever comes first
+    private static final int DATA_KEY_MAX_USES = 1000;
+    private static final long DATA_KEY_MAX_AGE_MILLISECONDS = 60 * 60 * 1000L;
+
+    private static final int UNWRAPPED_KEY_CACHE_SIZE = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKey kek;
+
+    private DataKey activeDataKey;
+
+    private final Map<String, SecretKey> unwrappedKeyCache = new LinkedHashMap<String, SecretKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SecretKey> eldest) {
+            return size() > UNWRAPPED_KEY_CACHE_SIZE;
+        }
+    };
+
+    public XrplEnvelopeSeedProtectionProvider(File keystoreFile, String keystorePassword, boolean createIfMissing) throws GeneralSecurityException {
+        this.kek = loadOrCreateKek(keystoreFile, keystorePassword.toCharArray(), createIfMissing);
+    }
+
+    @Override
+    public String encrypt(String seed) {
+        if (seed == null) {
+            return null;
+        }
+        return encryptWithDataKey(seed, nextDataKey(1));
+    }
+
+    @Override
+    public String decrypt(String protectedSeed) {
+        if (protectedSeed == null) {
+            return null;
+        }
+        //Seeds stored before envelope encryption was enabled remain readable
+        if (!protectedSeed.startsWith(ENVELOPE_PREFIX)) {
+            return SecurityUtil.decrypt(protectedSeed);
+        }
+
+        try {
+            final String[] parts = protectedSeed.substring(ENVELOPE_PREFIX.length()).split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Malformed envelope-encrypted seed value");
+            }
+            final SecretKey dataKey = getUnwrappedDataKey(parts[0]);
+            final byte[] plain = decryptBytes(dataKey, Base64.getDecoder().decode(parts[1]));
+
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to decrypt envelope-encrypted seed value", ex);
+        }
+    }
+
+    @Override
+    public List<String> encrypt(List<String> seeds) {
+        List<String> result = new ArrayList<>(seeds.size());
+        //Each chunk shares a single data key, chunks never exceed the data key usage limit
+        for (int start = 0; start < seeds.size(); start += DATA_KEY_MAX_USES) {
+            final List<String> chunk = seeds.subList(start, Math.min(start + DATA_KEY_MAX_USES, seeds.size()));
+            final DataKey dataKey = nextDataKey(chunk.size());
+            for (String seed : chunk) {
+                result.add(seed != null ? encryptWithDataKey(seed, dataKey) : null);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> decrypt(List<String> protectedSeeds) {
+        List<String> result = new ArrayList<>(protectedSeeds.size());
+        for (String protectedSeed : protectedSeeds) {
+            result.add(decrypt(protectedSeed));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isCurrentFormat(String protectedSeed) {
+        return protectedSeed != null && protectedSeed.startsWith(ENVELOPE_PREFIX);
+    }
+
+    private String encryptWithDataKey(String seed, DataKey dataKey) {
+        try {
+            final byte[] encrypted = encryptBytes(dataKey.key, seed.getBytes(StandardCharsets.UTF_8));
+
+            return ENVELOPE_PREFIX + dataKey.wrapped + ":" + Base64.getEncoder().encodeToString(encrypted);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to encrypt seed value", ex);
+        }
+    }
+
+    private synchronized DataKey nextDataKey(int uses) {
+        final long now = System.currentTimeMillis();
+        if (activeDataKey == null
+                || activeDataKey.uses + uses > DATA_KEY_MAX_USES
+                || now - activeDataKey.createdAt > DATA_KEY_MAX_AGE_MILLISECONDS) {
+            try {
+                final SecretKey key = generateAesKey();
+                final String wrapped = Base64.getEncoder().encodeToString(encryptBytes(kek, key.getEncoded()));
+                activeDataKey = new DataKey(key, wrapped, now);
+                unwrappedKeyCache.put(wrapped, key);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Unable to generate data key", ex);
+            }
+        }
+        activeDataKey.uses += uses;
+
+        return activeDataKey;
+    }
+
+    private synchronized SecretKey getUnwrappedDataKey(String wrapped) throws GeneralSecurityException {
+        SecretKey key = unwrappedKeyCache.get(wrapped);
+        if (key == null) {
+            key = new SecretKeySpec(decryptBytes(kek, Base64.getDecoder().decode(wrapped)), "AES");
+            unwrappedKeyCache.put(wrapped, key);
+        }
+        return key;
+    }
+
+    //Output is iv + ciphertext (including GCM tag)
+    private static byte[] encryptBytes(SecretKey key, byte[] plain) throws GeneralSecurityException {
+        final byte[] iv = new byte[GCM_IV_LENGTH_BYTES];
+        RANDOM.nextBytes(iv);
+
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH_BITS, iv));
+        final byte[] cipherText = cipher.doFinal(plain);
+
+        return ByteBuffer.allocate(iv.length + cipherText.length).put(iv).put(cipherText).array();
+    }
+
+    private static byte[] decryptBytes(SecretKey key, byte[] ivAndCipherText) throws GeneralSecurityException {
+        if (ivAndCipherText.length <= GCM_IV_LENGTH_BYTES) {
+            throw new GeneralSecurityException("Encrypted value is too short");
+        }
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH_BITS, ivAndCipherText, 0, GCM_IV_LENGTH_BYTES));
+
+        return cipher.doFinal(ivAndCipherText, GCM_IV_LENGTH_BYTES, ivAndCipherText.length - GCM_IV_LENGTH_BYTES);
+    }
+
+    private static SecretKey generateAesKey() throws GeneralSecurityException {
+        final KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(AES_KEY_SIZE_BITS, RANDOM);
+
+        return keyGenerator.generateKey();
+    }
+
+    private static SecretKey loadOrCreateKek(File keystoreFile, char[] password, boolean createIfMissing) throws GeneralSecurityException {
+        if (keystoreFile.exists()) {
+            return loadKek(keystoreFile, password);
+        }
+        if (!createIfMissing) {
+            throw new GeneralSecurityException("Seed keystore " + keystoreFile.getAbsolutePath() + " not found. "
+                + "Envelope-encrypted seeds can only be decrypted with the keystore they were encrypted with.");
+        }
+
+        final KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+        final KeyStore.ProtectionParameter protection = new KeyStore.PasswordProtection(password);
+        final Path target = keystoreFile.getAbsoluteFile().toPath();
+        Path temp = null;
+
+        try {
+            keyStore.load(null, password);
+            final SecretKey newKek = generateAesKey();
+            keyStore.setEntry(KEK_ALIAS, new KeyStore.SecretKeyEntry(newKek), protection);
+
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                keyStore.store(out, password);
+            }
+
+            //Publish atomically and never replace an existing keystore, e.g. one written concurrently by another node
+            try {
+                Files.createLink(target, temp);
+            } catch (FileAlreadyExistsException ex) {
+                throw ex;
+            } catch (UnsupportedOperationException | IOException ex) {
+                //File system without hard links, fall back to an atomic rename
+                if (Files.exists(target)) {
+                    throw new FileAlreadyExistsException(target.toString());
+                }
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+            }
+            LogUtil.info(XrplEnvelopeSeedProtectionProvider.class.getName(), "Generated new seed key-encryption key at " + target);
+
+            return newKek;
+        } catch (FileAlreadyExistsException ex) {
+            //Lost the race, use the keystore that won
+            return loadKek(keystoreFile, password);
+        } catch (IOException ex) {
+            throw new GeneralSecurityException("Unable to create keystore " + target, ex);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ex) {
+                    LogUtil.warn(XrplEnvelopeSeedProtectionProvider.class.getName(), "Unable to delete temporary keystore " + temp);
+                }
+            }
+        }
+    }
+
+    private static SecretKey loadKek(File keystoreFile, char[] password) throws GeneralSecurityException {
+        final KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+
+        try (InputStream in = new FileInputStream(keystoreFile)) {
+            keyStore.load(in, password);
+        } catch (IOException ex) {
+            throw new GeneralSecurityException("Unable to load keystore " + keystoreFile.getAbsolutePath() + ". Check the keystore password.", ex);
+        }
+        final KeyStore.Entry entry = keyStore.getEntry(KEK_ALIAS, new KeyStore.PasswordProtection(password));
+        if (!(entry instanceof KeyStore.SecretKeyEntry)) {
+            throw new GeneralSecurityException("Keystore " + keystoreFile.getAbsolutePath() + " has no secret key entry named " + KEK_ALIAS);
+        }
+        return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+    }
+
+    private static class DataKey {
+        private final SecretKey key;
+        private final String wrapped;
+        private final long createdAt;
+        private int uses;
+
+        private DataKey(SecretKey key, String wrapped, long createdAt) {
+            this.key = key;
+            this.wrapped = wrapped;
+            this.createdAt = createdAt;
+        }
+    }
+}
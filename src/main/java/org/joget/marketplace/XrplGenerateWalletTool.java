@@ -63,9 +63,15 @@ public class XrplGenerateWalletTool extends DefaultApplicationPlugin {
                 final Wallet wallet = walletGeneration.wallet();
                 //Wallet Seed MUST be secured at all times.
                 /* 
-                    See XrplUtil encrypt & decrypt method to implement your preferred algo. Current way of encrypt/decrypt is just for POC. 
+                    See XrplSeedProtectionProvider to implement your preferred algo. "legacy" protection is just for POC. 
                 */
-                final String walletSeed = XrplUtil.encrypt(walletGeneration.seed());
+                final XrplSeedProtectionProvider seedProtectionProvider = XrplUtil.getSeedProtectionProvider(
+                    getPropertyString("seedProtection"), 
+                    getPropertyString("keystorePath"), 
+                    getPropertyString("keystorePassword"),
+                    true
+                );
+                final String walletSeed = seedProtectionProvider.encrypt(walletGeneration.seed());
                 
                 final Address classicAddress = wallet.classicAddress();
                 
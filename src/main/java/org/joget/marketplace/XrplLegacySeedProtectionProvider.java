@@ -0,0 +1,51 @@
+package org.joget.marketplace;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.joget.commons.util.SecurityUtil;
+
+public class XrplLegacySeedProtectionProvider implements XrplSeedProtectionProvider {
+    
+    private static final XrplLegacySeedProtectionProvider INSTANCE = new XrplLegacySeedProtectionProvider();
+    
+    public static XrplLegacySeedProtectionProvider getInstance() {
+        return INSTANCE;
+    }
+    
+    @Override
+    public String encrypt(String seed) {
+        return SecurityUtil.encrypt(seed);
+    }
+
+    @Override
+    public String decrypt(String protectedSeed) {
+        //SecurityUtil returns unknown values as-is, which would surface later as an invalid seed
+        if (protectedSeed != null && protectedSeed.startsWith(XrplEnvelopeSeedProtectionProvider.ENVELOPE_PREFIX)) {
+            throw new IllegalArgumentException("Seed value is envelope-encrypted. Set Wallet Seed Protection to Envelope Encryption to decrypt it.");
+        }
+        return SecurityUtil.decrypt(protectedSeed);
+    }
+
+    @Override
+    public List<String> encrypt(List<String> seeds) {
+        List<String> result = new ArrayList<>(seeds.size());
+        for (String seed : seeds) {
+            result.add(encrypt(seed));
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> decrypt(List<String> protectedSeeds) {
+        List<String> result = new ArrayList<>(protectedSeeds.size());
+        for (String protectedSeed : protectedSeeds) {
+            result.add(decrypt(protectedSeed));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isCurrentFormat(String protectedSeed) {
+        return protectedSeed != null && !protectedSeed.startsWith(XrplEnvelopeSeedProtectionProvider.ENVELOPE_PREFIX);
+    }
+}
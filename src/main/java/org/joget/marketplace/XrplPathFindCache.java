@@ -0,0 +1,151 @@
+package org.joget.marketplace;
+
+import com.google.common.primitives.UnsignedLong;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.xrpl.xrpl4j.client.JsonRpcClientErrorException;
+import org.xrpl.xrpl4j.client.XrplClient;
+import org.xrpl.xrpl4j.model.client.common.LedgerIndex;
+import org.xrpl.xrpl4j.model.client.path.PathAlternative;
+import org.xrpl.xrpl4j.model.client.path.PathCurrency;
+import org.xrpl.xrpl4j.model.client.path.RipplePathFindRequestParams;
+import org.xrpl.xrpl4j.model.client.path.RipplePathFindResult;
+import org.xrpl.xrpl4j.model.transactions.Address;
+import org.xrpl.xrpl4j.model.transactions.CurrencyAmount;
+import org.xrpl.xrpl4j.model.transactions.Payment;
+import org.xrpl.xrpl4j.model.transactions.PathStep;
+
+/*
+    Caches ripple_path_find results per (server, source, destination, currency pair).
+
+    Paths do not depend on the delivered amount, so an entry is reused for any amount while the validated ledger
+    is within PATH_REUSE_LEDGER_WINDOW ledgers of the one it was found on. The window outlasts a payment's validation
+    wait, so sequential payments of a batch share one path-finding call.
+
+    The quoted rate (source amount per unit delivered) is size-dependent. Callers scale it into SendMax with slippage,
+    so an under-quote fails safely with tecPATH_PARTIAL instead of overspending; invalidate() then forces a re-quote.
+*/
+public class XrplPathFindCache {
+
+    //About 30-40 seconds at 3-4 seconds per validated ledger
+    public static final int PATH_REUSE_LEDGER_WINDOW = 10;
+
+    private static final int MAX_ENTRIES = 512;
+
+    private static final Map<String, PathFindEntry> cache = new ConcurrentHashMap<>();
+
+    private static final Map<String, LedgerIndex> latestLedgerIndexes = new ConcurrentHashMap<>();
+
+    public static PathFindEntry findPath(XrplClient client, String serverUrl, Address source, Address destination, CurrencyAmount destinationAmount,
+            String sendCurrencyCode, Address sendCurrencyIssuer, LedgerIndex validatedLedgerIndex) throws JsonRpcClientErrorException {
+
+        final String key = getKey(serverUrl, source, destination,
+            XrplUtil.getCurrencyKey(sendCurrencyCode, sendCurrencyIssuer != null ? sendCurrencyIssuer.value() : null),
+            XrplUtil.getCurrencyKey(destinationAmount));
+
+        PathFindEntry entry = cache.get(key);
+        if (entry != null && isWithinWindow(entry.ledgerIndex, validatedLedgerIndex)) {
+            return entry;
+        }
+
+        final PathCurrency sendCurrency = PathCurrency.builder()
+            .currency(sendCurrencyCode)
+            .issuer(Optional.ofNullable(sendCurrencyIssuer))
+            .build();
+
+        final RipplePathFindResult pathFindResult = client.ripplePathFind(RipplePathFindRequestParams.builder()
+            .sourceAccount(source)
+            .destinationAccount(destination)
+            .destinationAmount(destinationAmount)
+            .addSourceCurrencies(sendCurrency)
+            .ledgerIndex(validatedLedgerIndex)
+            .build());
+
+        //Pick the alternative that costs the least to deliver the requested amount
+        PathAlternative cheapest = null;
+        BigDecimal cheapestValue = null;
+        for (PathAlternative alternative : pathFindResult.alternatives()) {
+            BigDecimal value = XrplUtil.getCurrencyValue(alternative.sourceAmount());
+            if (cheapestValue == null || value.compareTo(cheapestValue) < 0) {
+                cheapest = alternative;
+                cheapestValue = value;
+            }
+        }
+
+        if (cheapest == null) {
+            return null;
+        }
+
+        entry = new PathFindEntry(
+            serverUrl,
+            validatedLedgerIndex,
+            new ArrayList<>(cheapest.pathsComputed()),
+            cheapestValue.divide(XrplUtil.getCurrencyValue(destinationAmount), MathContext.DECIMAL64)
+        );
+        put(key, entry);
+
+        return entry;
+    }
+
+    //Drop the entry a failed payment was built from, e.g. after tecPATH_PARTIAL
+    public static void invalidate(String serverUrl, Payment payment) {
+        if (payment.sendMax().isPresent()) {
+            cache.remove(getKey(serverUrl, payment.account(), payment.destination(),
+                XrplUtil.getCurrencyKey(payment.sendMax().get()),
+                XrplUtil.getCurrencyKey(payment.amount())));
+        }
+    }
+
+    private static String getKey(String serverUrl, Address source, Address destination, String sendCurrencyKey, String deliverCurrencyKey) {
+        return serverUrl + "|" + source + "|" + destination + "|" + sendCurrencyKey + "|" + deliverCurrencyKey;
+    }
+
+    private static boolean isWithinWindow(LedgerIndex foundOn, LedgerIndex current) {
+        final UnsignedLong found = foundOn.unsignedLongValue();
+        final UnsignedLong now = current.unsignedLongValue();
+
+        //A lagging server may report an older validated ledger, the entry is still fresh for it
+        return now.compareTo(found) <= 0 || now.minus(found).compareTo(UnsignedLong.valueOf(PATH_REUSE_LEDGER_WINDOW)) <= 0;
+    }
+
+    private static void put(String key, PathFindEntry entry) {
+        final LedgerIndex current = latestLedgerIndexes.get(entry.serverUrl);
+        if (current == null || entry.ledgerIndex.unsignedLongValue().compareTo(current.unsignedLongValue()) > 0) {
+            latestLedgerIndexes.put(entry.serverUrl, entry.ledgerIndex);
+            cache.values().removeIf(e -> e.serverUrl.equals(entry.serverUrl) && !isWithinWindow(e.ledgerIndex, entry.ledgerIndex));
+        }
+        if (cache.size() >= MAX_ENTRIES) {
+            cache.clear();
+        }
+        cache.put(key, entry);
+    }
+
+    public static class PathFindEntry {
+        private final String serverUrl;
+        private final LedgerIndex ledgerIndex;
+        private final List<List<PathStep>> paths;
+        //Source amount needed per unit of destination amount, as quoted by ripple_path_find
+        private final BigDecimal rate;
+
+        private PathFindEntry(String serverUrl, LedgerIndex ledgerIndex, List<List<PathStep>> paths, BigDecimal rate) {
+            this.serverUrl = serverUrl;
+            this.ledgerIndex = ledgerIndex;
+            this.paths = Collections.unmodifiableList(paths);
+            this.rate = rate;
+        }
+
+        public List<List<PathStep>> getPaths() {
+            return paths;
+        }
+
+        public BigDecimal getRate() {
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.joget.marketplace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.service.AppService;
+import org.joget.apps.app.service.AppUtil;
+import org.joget.apps.form.dao.FormDataDao;
+import org.joget.apps.form.model.FormRow;
+import org.joget.apps.form.model.FormRowSet;
+import org.joget.apps.form.service.FormUtil;
+import org.joget.commons.util.LogUtil;
+import org.joget.commons.util.PluginThread;
+import org.joget.plugin.base.DefaultApplicationPlugin;
+import org.springframework.context.ApplicationContext;
+
+public class XrplReencryptSeedTool extends DefaultApplicationPlugin {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    //Prevent concurrent jobs on the same form table
+    private static final Set<String> runningJobs = Collections.synchronizedSet(new HashSet<>());
+
+    @Override
+    public String getName() {
+        return "XRPL Re-encrypt Wallet Seed Tool";
+    }
+
+    @Override
+    public String getVersion() {
+        return "7.0.0";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Re-encrypts stored wallet seeds into envelope encryption in the background.";
+    }
+
+    @Override
+    public Object execute(Map props) {
+        final AppDefinition appDef = (AppDefinition) props.get("appDef");
+        final String formDefId = getPropertyString("formDefId");
+        final String walletSeedField = getPropertyString("walletSeedField");
+
+        if (appDef == null || formDefId.isEmpty() || walletSeedField.isEmpty()) {
+            LogUtil.warn(getClass().getName(), "Re-encryption not started. Form and wallet seed field must be configured.");
+            return null;
+        }
+
+        final XrplSeedProtectionProvider seedProtectionProvider;
+        try {
+            seedProtectionProvider = XrplUtil.getSeedProtectionProvider(
+                XrplUtil.SEED_PROTECTION_ENVELOPE,
+                getPropertyString("keystorePath"),
+                getPropertyString("keystorePassword"),
+                true
+            );
+        } catch (Exception ex) {
+            LogUtil.error(getClass().getName(), ex, "Error loading seed keystore...");
+            return null;
+        }
+
+        final int batchSize = getBatchSize();
+        final String jobKey = appDef.getAppId() + ":" + formDefId;
+
+        if (!runningJobs.add(jobKey)) {
+            LogUtil.info(getClass().getName(), "Re-encryption already running for form " + formDefId);
+            return null;
+        }
+
+        Thread reencryptThread = new PluginThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int count = reencryptSeeds(appDef, formDefId, walletSeedField, seedProtectionProvider, batchSize);
+                    LogUtil.info(XrplReencryptSeedTool.class.getName(), "Re-encrypted " + count + " wallet seed(s) in form " + formDefId);
+                } catch (Exception ex) {
+                    LogUtil.error(XrplReencryptSeedTool.class.getName(), ex, "Error re-encrypting wallet seeds...");
+                } finally {
+                    runningJobs.remove(jobKey);
+                }
+            }
+        });
+        reencryptThread.setDaemon(true);
+        reencryptThread.start();
+
+        return null;
+    }
+
+    protected int reencryptSeeds(AppDefinition appDef, String formDefId, String walletSeedField, XrplSeedProtectionProvider seedProtectionProvider, int batchSize) {
+        ApplicationContext ac = AppUtil.getApplicationContext();
+        AppService appService = (AppService) ac.getBean("appService");
+        FormDataDao formDataDao = (FormDataDao) ac.getBean("formDataDao");
+
+        final String tableName = appService.getFormTableName(appDef, formDefId);
+
+        int count = 0;
+        String lastId = null;
+        FormRowSet rows;
+        do {
+            //Keyset paging on id, new wallets inserted while the job runs cannot shift unvisited rows
+            if (lastId == null) {
+                rows = formDataDao.find(formDefId, tableName, null, null, FormUtil.PROPERTY_ID, false, 0, batchSize);
+            } else {
+                rows = formDataDao.find(formDefId, tableName, "WHERE e.id > ?", new Object[]{lastId}, FormUtil.PROPERTY_ID, false, 0, batchSize);
+            }
+            if (rows == null || rows.isEmpty()) {
+                break;
+            }
+            lastId = rows.get(rows.size() - 1).getId();
+
+            List<FormRow> pendingRows = new ArrayList<>();
+            List<String> pendingSeeds = new ArrayList<>();
+            for (FormRow row : rows) {
+                String storedSeed = row.getProperty(walletSeedField);
+                if (storedSeed != null && !storedSeed.isEmpty() && !seedProtectionProvider.isCurrentFormat(storedSeed)) {
+                    pendingRows.add(row);
+                    pendingSeeds.add(storedSeed);
+                }
+            }
+
+            if (!pendingRows.isEmpty()) {
+                final List<String> plainSeeds = seedProtectionProvider.decrypt(pendingSeeds);
+                final List<String> reencryptedSeeds = seedProtectionProvider.encrypt(plainSeeds);
+
+                FormRowSet updatedRows = new FormRowSet();
+                for (int i = 0; i < pendingRows.size(); i++) {
+                    FormRow row = pendingRows.get(i);
+                    //Stored value is the only copy of the seed, never overwrite it unless it is the record's seed and the new value reads back
+                    if (!isVerified(seedProtectionProvider, row.getId(), plainSeeds.get(i), reencryptedSeeds.get(i))) {
+                        LogUtil.warn(getClass().getName(), "Skipped re-encrypting wallet seed of record " + row.getId() + ". Decrypted seed does not match the wallet address or could not be verified.");
+                        continue;
+                    }
+                    row.setProperty(walletSeedField, reencryptedSeeds.get(i));
+                    updatedRows.add(row);
+                }
+                if (!updatedRows.isEmpty()) {
+                    formDataDao.saveOrUpdate(formDefId, tableName, updatedRows);
+                    count += updatedRows.size();
+                }
+            }
+        } while (rows.size() == batchSize);
+
+        return count;
+    }
+
+    private boolean isVerified(XrplSeedProtectionProvider seedProtectionProvider, String walletAddress, String plainSeed, String reencryptedSeed) {
+        if (plainSeed == null || plainSeed.isEmpty() || reencryptedSeed == null) {
+            return false;
+        }
+        try {
+            //SecurityUtil returns undecryptable values as-is, so only a seed deriving the record's classic address (record ID) is trusted
+            //Classic address does not depend on the network, isTest only affects the X-address
+            final String derivedAddress = XrplUtil.getWalletFromSeed(plainSeed, false).classicAddress().toString();
+            
+            return derivedAddress.equals(walletAddress) && plainSeed.equals(seedProtectionProvider.decrypt(reencryptedSeed));
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    private int getBatchSize() {
+        try {
+            int batchSize = Integer.parseInt(getPropertyString("batchSize"));
+            return batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        } catch (NumberFormatException ex) {
+            return DEFAULT_BATCH_SIZE;
+        }
+    }
+
+    @Override
+    public String getLabel() {
+        return getName();
+    }
+
+    @Override
+    public String getClassName() {
+        return getClass().getName();
+    }
+
+    @Override
+    public String getPropertyOptions() {
+        return AppUtil.readPluginResource(getClass().getName(), "/properties/XrplReencryptSeedTool.json", null, true, "messages/XrplMessages");
+    }
+}
@@ -0,0 +1,18 @@
+package org.joget.marketplace;
+
+import java.util.List;
+
+public interface XrplSeedProtectionProvider {
+    
+    String encrypt(String seed);
+    
+    String decrypt(String protectedSeed);
+    
+    //Batch variants allow providers to amortize key setup across many seeds
+    List<String> encrypt(List<String> seeds);
+    
+    List<String> decrypt(List<String> protectedSeeds);
+    
+    //True if value is already protected in this provider's current format (no re-encryption needed)
+    boolean isCurrentFormat(String protectedSeed);
+}
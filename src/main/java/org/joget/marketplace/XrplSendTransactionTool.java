@@ -3,6 +3,8 @@ package org.joget.marketplace;
 import com.google.common.primitives.UnsignedInteger;
 import com.google.common.primitives.UnsignedLong;
 import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
 import java.util.Map;
 import org.joget.apps.app.service.AppUtil;
 import org.joget.commons.util.LogUtil;
@@ -26,12 +28,19 @@ import org.xrpl.xrpl4j.model.client.transactions.TransactionRequestParams;
 import org.xrpl.xrpl4j.model.client.transactions.TransactionResult;
 import org.xrpl.xrpl4j.model.immutables.FluentCompareTo;
 import org.xrpl.xrpl4j.model.transactions.Address;
+import org.xrpl.xrpl4j.model.transactions.CurrencyAmount;
+import org.xrpl.xrpl4j.model.transactions.ImmutablePayment;
 import org.xrpl.xrpl4j.model.transactions.Payment;
 import org.xrpl.xrpl4j.model.transactions.Transaction;
 import org.xrpl.xrpl4j.model.transactions.XrpCurrencyAmount;
 import org.xrpl.xrpl4j.wallet.Wallet;
 
 public class XrplSendTransactionTool extends DefaultApplicationPlugin {
+    
+    private static final BigDecimal DEFAULT_SEND_MAX_SLIPPAGE_PERCENT = BigDecimal.ONE;
+    
+    //Issued currency amounts carry at most 15 significant digits
+    private static final MathContext ISSUED_CURRENCY_PRECISION = new MathContext(15, RoundingMode.UP);
 
     @Override
     public String getName() {
@@ -61,14 +70,25 @@ public class XrplSendTransactionTool extends DefaultApplicationPlugin {
         }
         
         final String originAddress = WorkflowUtil.processVariable(getPropertyString("originAddress"), "", wfAssignment);
-        final String walletSeed = XrplUtil.decrypt(WorkflowUtil.processVariable(getPropertyString("walletSeed"), "", wfAssignment));
         final String destinationAddress = WorkflowUtil.processVariable(getPropertyString("destinationAddress"), "", wfAssignment);
         final String amount = WorkflowUtil.processVariable(getPropertyString("amount"), "", wfAssignment);
+        final String currencyCode = WorkflowUtil.processVariable(getPropertyString("currencyCode"), "", wfAssignment);
+        final String currencyIssuer = WorkflowUtil.processVariable(getPropertyString("currencyIssuer"), "", wfAssignment);
+        final String sendCurrencyCode = WorkflowUtil.processVariable(getPropertyString("sendCurrencyCode"), "", wfAssignment);
+        final String sendCurrencyIssuer = WorkflowUtil.processVariable(getPropertyString("sendCurrencyIssuer"), "", wfAssignment);
         
         try {
             XrplClient client = XrplUtil.getXrplClient(rippledServer, rippledUrl);
             
             if (client != null) {
+                //Envelope provider also reads seeds stored with legacy protection
+                final XrplSeedProtectionProvider seedProtectionProvider = XrplUtil.getSeedProtectionProvider(
+                    getPropertyString("seedProtection"), 
+                    getPropertyString("keystorePath"), 
+                    getPropertyString("keystorePassword"),
+                    false
+                );
+                final String walletSeed = seedProtectionProvider.decrypt(WorkflowUtil.processVariable(getPropertyString("walletSeed"), "", wfAssignment));
                 
                 final Wallet originWallet = XrplUtil.getWalletFromSeed(walletSeed, isTest);
                 //Ensure seed matches user intended origin address
@@ -80,7 +100,11 @@ public class XrplSendTransactionTool extends DefaultApplicationPlugin {
                 LedgerIndex latestValidatedLedgerIndex = XrplUtil.getLatestValidatedLedgerIndex(client);
                 final UnsignedInteger lastLedgerSequence = XrplUtil.getLastLedgerSequence(latestValidatedLedgerIndex);
                 
-                final Payment payment = constructPayment(client, originWallet, destinationAddress, amount, lastLedgerSequence);
+                final Payment payment = constructPayment(
+                    client, originWallet, destinationAddress, amount, 
+                    currencyCode, currencyIssuer, sendCurrencyCode, sendCurrencyIssuer, 
+                    latestValidatedLedgerIndex, lastLedgerSequence
+                );
                 
                 if (payment == null) {
                     return null;
@@ -107,6 +131,12 @@ public class XrplSendTransactionTool extends DefaultApplicationPlugin {
 
                     if (transactionResult.validated()) {
                         transactionValidated = true;
+                        
+                        //Cached quote was too low for this amount, next payment of the batch re-quotes the path
+                        final String resultCode = transactionResult.metadata().isPresent() ? transactionResult.metadata().get().transactionResult() : "";
+                        if ("tecPATH_PARTIAL".equals(resultCode) || "tecPATH_DRY".equals(resultCode)) {
+                            XrplPathFindCache.invalidate(XrplUtil.getRippledServerUrl(rippledServer, rippledUrl), payment);
+                        }
                     } else {
                         final boolean lastLedgerSequenceHasPassed = FluentCompareTo.
                           is(latestValidatedLedgerIndex.unsignedLongValue())
@@ -139,7 +169,9 @@ public class XrplSendTransactionTool extends DefaultApplicationPlugin {
         return signatureService.sign(KeyMetadata.EMPTY, payment);
     }
 
-    private Payment constructPayment(XrplClient client, Wallet originWallet, String destinationAddress, String amount, UnsignedInteger lastLedgerSequence) throws JsonRpcClientErrorException {
+    private Payment constructPayment(XrplClient client, Wallet originWallet, String destinationAddress, String amount, 
+            String currencyCode, String currencyIssuer, String sendCurrencyCode, String sendCurrencyIssuer, 
+            LedgerIndex validatedLedgerIndex, UnsignedInteger lastLedgerSequence) throws JsonRpcClientErrorException {
         final AccountInfoRequestParams requestParams = AccountInfoRequestParams
             .builder().ledgerIndex(LedgerIndex.VALIDATED)
             .account(originWallet.classicAddress())
@@ -151,22 +183,76 @@ public class XrplSendTransactionTool extends DefaultApplicationPlugin {
             //Get current ledger fee
             final XrpCurrencyAmount openLedgerFee = XrplUtil.getCurrentOpenLedgerFeeInDrops(client);
 
-            //Amount is limited to max 6 decimal places
-            return Payment.builder()
+            final BigDecimal deliverValue = new BigDecimal(amount);
+            final CurrencyAmount deliverAmount = XrplUtil.getCurrencyAmount(currencyCode, currencyIssuer, deliverValue);
+
+            final ImmutablePayment.Builder paymentBuilder = Payment.builder()
                 .account(originWallet.classicAddress())
                 .destination(Address.of(destinationAddress))
-                .amount(XrpCurrencyAmount.ofXrp(new BigDecimal(amount)))
+                .amount(deliverAmount)
                 .fee(openLedgerFee)
                 .sequence(sequence)
                 .lastLedgerSequence(lastLedgerSequence)
-                .signingPublicKey(originWallet.publicKey())
-                .build();
+                .signingPublicKey(originWallet.publicKey());
+            
+            final BigDecimal slippageFactor = BigDecimal.ONE.add(getSendMaxSlippagePercent().movePointLeft(2));
+            
+            //Send currency defaults to the delivered currency, which needs no path finding
+            if (!sendCurrencyCode.isEmpty() 
+                    && !XrplUtil.getCurrencyKey(sendCurrencyCode, sendCurrencyIssuer).equals(XrplUtil.getCurrencyKey(deliverAmount))) {
+                final boolean isSendXrp = XrplUtil.isXrp(sendCurrencyCode);
+                
+                //Paths and quoted rate are cached per currency pair, and reused for any amount within a window of validated ledgers
+                final XrplPathFindCache.PathFindEntry path = XrplPathFindCache.findPath(
+                    client,
+                    XrplUtil.getRippledServerUrl(getPropertyString("rippledServer"), getPropertyString("rippledUrl")),
+                    originWallet.classicAddress(),
+                    Address.of(destinationAddress),
+                    deliverAmount,
+                    isSendXrp ? XrplUtil.XRP_CURRENCY_CODE : XrplUtil.toCurrencyCode(sendCurrencyCode),
+                    isSendXrp ? null : Address.of(sendCurrencyIssuer.trim()),
+                    validatedLedgerIndex
+                );
+                if (path == null) {
+                    LogUtil.warn(getClass().getName(), "Transaction failed! No payment path found from " + sendCurrencyCode + " to " + currencyCode + ".");
+                    return null;
+                }
+                
+                //Quoted rate may be from a different amount, slippage absorbs the difference and SendMax caps the spend
+                BigDecimal sendMaxValue = path.getRate()
+                    .multiply(deliverValue)
+                    .multiply(slippageFactor)
+                    .round(ISSUED_CURRENCY_PRECISION);
+                if (isSendXrp) {
+                    sendMaxValue = sendMaxValue.setScale(6, RoundingMode.UP);
+                }
+                
+                paymentBuilder
+                    .paths(path.getPaths())
+                    .sendMax(XrplUtil.getCurrencyAmount(sendCurrencyCode, sendCurrencyIssuer, sendMaxValue));
+            } else if (!XrplUtil.isXrp(currencyCode) && !originWallet.classicAddress().value().equals(currencyIssuer.trim())) {
+                //Issuer transfer fee (TransferRate) is charged to holders on top of the delivered amount, slippage must cover it
+                final BigDecimal sendMaxValue = deliverValue.multiply(slippageFactor).round(ISSUED_CURRENCY_PRECISION);
+                
+                paymentBuilder.sendMax(XrplUtil.getCurrencyAmount(currencyCode, currencyIssuer, sendMaxValue));
+            }
+
+            return paymentBuilder.build();
         } else {
             LogUtil.warn(getClass().getName(), "Transaction failed! Origin account data is not from validated ledger!");
             return null;
         }
     }
     
+    private BigDecimal getSendMaxSlippagePercent() {
+        try {
+            final BigDecimal slippage = new BigDecimal(getPropertyString("sendMaxSlippage"));
+            return slippage.signum() >= 0 ? slippage : DEFAULT_SEND_MAX_SLIPPAGE_PERCENT;
+        } catch (NumberFormatException ex) {
+            return DEFAULT_SEND_MAX_SLIPPAGE_PERCENT;
+        }
+    }
+    
     protected void storeToWorkflowVariable(WorkflowAssignment wfAssignment, Map properties, TransactionResult transactionResult) {
         String rippledServer = getPropertyString("rippledServer");
         
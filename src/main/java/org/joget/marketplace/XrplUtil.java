@@ -2,15 +2,25 @@ package org.joget.marketplace;
 
 import com.google.common.primitives.UnsignedInteger;
 import com.google.common.primitives.UnsignedLong;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
 import okhttp3.HttpUrl;
 import org.joget.commons.util.LogUtil;
-import org.joget.commons.util.SecurityUtil;
+import org.joget.commons.util.SetupManager;
 import org.xrpl.xrpl4j.client.JsonRpcClientErrorException;
 import org.xrpl.xrpl4j.client.XrplClient;
 import org.xrpl.xrpl4j.keypairs.KeyPair;
 import org.xrpl.xrpl4j.model.client.common.LedgerIndex;
 import org.xrpl.xrpl4j.model.client.fees.FeeResult;
 import org.xrpl.xrpl4j.model.client.ledger.LedgerRequestParams;
+import org.xrpl.xrpl4j.model.transactions.Address;
+import org.xrpl.xrpl4j.model.transactions.CurrencyAmount;
+import org.xrpl.xrpl4j.model.transactions.IssuedCurrencyAmount;
 import org.xrpl.xrpl4j.model.transactions.XrpCurrencyAmount;
 import org.xrpl.xrpl4j.wallet.DefaultWalletFactory;
 import org.xrpl.xrpl4j.wallet.Wallet;
@@ -33,31 +43,23 @@ public class XrplUtil {
     //Average tx processing time is about 3-7 seconds
     public static final int TX_PROCESSING_WAIT_TIME_MILLISECONDS = 4000;
     
+    public static final String XRP_CURRENCY_CODE = "XRP";
+    
+    public static final String SEED_PROTECTION_LEGACY = "legacy";
+    public static final String SEED_PROTECTION_ENVELOPE = "envelope";
+    
+    //Located under Joget's wflow base directory when no keystore path is configured
+    public static final String DEFAULT_SEED_KEYSTORE_FILENAME = "xrpl-seed-kek.p12";
+    
+    //One provider per keystore file and password, so cached data keys are shared across plugin executions
+    private static final Map<String, XrplEnvelopeSeedProtectionProvider> envelopeProviders = new HashMap<>();
+    
     public static XrplClient getXrplClient(String rippledServer, String rippledUrl) {
         
         XrplClient xrplClient = null;
         
         try {
-            HttpUrl url;
-
-            //Default to "testnet" in case of no selection for rippledServer
-            switch (rippledServer) {
-                case "generalMainnet":
-                    url = HttpUrl.get(GENERAL_MAINNET_URL);
-                    break;
-                case "fullHistoryMainnet":
-                    url = HttpUrl.get(FULL_HISTORY_MAINNET_URL);
-                    break;
-                case "devnet":
-                    url = HttpUrl.get(DEVNET_URL);
-                    break;
-                case "custom":
-                    url = HttpUrl.get(rippledUrl);
-                    break;
-                default:
-                    url = HttpUrl.get(TESTNET_URL);
-                    break;
-            }
+            HttpUrl url = HttpUrl.get(getRippledServerUrl(rippledServer, rippledUrl));
 
             xrplClient = new XrplClient(url);
         } catch (Exception ex) {
@@ -67,6 +69,31 @@ public class XrplUtil {
         return xrplClient;
     }
     
+    public static String getRippledServerUrl(String rippledServer, String rippledUrl) {
+        String url;
+        
+        //Default to "testnet" in case of no selection for rippledServer
+        switch (rippledServer) {
+            case "generalMainnet":
+                url = GENERAL_MAINNET_URL;
+                break;
+            case "fullHistoryMainnet":
+                url = FULL_HISTORY_MAINNET_URL;
+                break;
+            case "devnet":
+                url = DEVNET_URL;
+                break;
+            case "custom":
+                url = rippledUrl;
+                break;
+            default:
+                url = TESTNET_URL;
+                break;
+        }
+        
+        return url;
+    }
+    
     public static String getTransactionExplorerUrl(String rippledServer, String transactionHash) {
         String transactionUrl;
         
@@ -100,18 +127,54 @@ public class XrplUtil {
         return wallet;
     }
     
-    //Feel free to implement more secure encryption algo
-    public static String encrypt(String content) {
-        content = SecurityUtil.encrypt(content);
+    /*
+        createKeystore must only be set by tools that encrypt. Decrypting tools fail on a missing keystore
+        instead of generating a new key-encryption key that cannot read any stored seed.
+    */
+    public static XrplSeedProtectionProvider getSeedProtectionProvider(String seedProtection, String keystorePath, String keystorePassword, boolean createKeystore) throws GeneralSecurityException {
+        if (!SEED_PROTECTION_ENVELOPE.equals(seedProtection)) {
+            return XrplLegacySeedProtectionProvider.getInstance();
+        }
         
-        return content;
+        final File keystoreFile;
+        if (keystorePath == null || keystorePath.trim().isEmpty()) {
+            keystoreFile = new File(SetupManager.getBaseDirectory(), DEFAULT_SEED_KEYSTORE_FILENAME);
+        } else {
+            keystoreFile = new File(keystorePath.trim());
+        }
+        final String password = keystorePassword != null ? keystorePassword : "";
+        
+        //Password is part of the key, so a wrong password never reuses a KEK loaded with the right one
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(keystoreFile.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(password.getBytes(StandardCharsets.UTF_8));
+        final String key = toHex(digest.digest());
+        
+        synchronized (envelopeProviders) {
+            XrplEnvelopeSeedProtectionProvider provider = envelopeProviders.get(key);
+            if (provider == null) {
+                provider = new XrplEnvelopeSeedProtectionProvider(keystoreFile, password, createKeystore);
+                envelopeProviders.put(key, provider);
+            }
+            return provider;
+        }
+    }
+    
+    /**
+     * @deprecated Use {@link #getSeedProtectionProvider(String, String, String, boolean)} instead.
+     */
+    @Deprecated
+    public static String encrypt(String content) {
+        return XrplLegacySeedProtectionProvider.getInstance().encrypt(content);
     }
     
-    //Feel free to implement more secure encryption algo, and decrypt accordingly
+    /**
+     * @deprecated Use {@link #getSeedProtectionProvider(String, String, String, boolean)} instead.
+     */
+    @Deprecated
     public static String decrypt(String content) {
-        content = SecurityUtil.decrypt(content);
-        
-        return content;
+        return XrplLegacySeedProtectionProvider.getInstance().decrypt(content);
     }
     
     public static XrpCurrencyAmount getCurrentOpenLedgerFeeInDrops(XrplClient client) throws JsonRpcClientErrorException {
@@ -135,6 +198,71 @@ public class XrplUtil {
         return validatedLedger;
     }
     
+    public static boolean isXrp(String currencyCode) {
+        return currencyCode == null || currencyCode.trim().isEmpty() || XRP_CURRENCY_CODE.equalsIgnoreCase(currencyCode.trim());
+    }
+    
+    //Standard codes are 3 characters, anything longer is sent as the 160-bit hex (nonstandard) code
+    public static String toCurrencyCode(String currencyCode) {
+        currencyCode = currencyCode.trim();
+        if (currencyCode.length() == 3 || currencyCode.matches("[0-9A-Fa-f]{40}")) {
+            return currencyCode;
+        }
+        
+        final byte[] bytes = currencyCode.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 20) {
+            throw new IllegalArgumentException("Currency code is longer than 20 bytes: " + currencyCode);
+        }
+        StringBuilder hex = new StringBuilder(toHex(bytes));
+        while (hex.length() < 40) {
+            hex.append('0');
+        }
+        return hex.toString();
+    }
+    
+    public static CurrencyAmount getCurrencyAmount(String currencyCode, String issuerAddress, BigDecimal value) {
+        if (isXrp(currencyCode)) {
+            //Amount is limited to max 6 decimal places
+            return XrpCurrencyAmount.ofXrp(value);
+        }
+        
+        return IssuedCurrencyAmount.builder()
+            .currency(toCurrencyCode(currencyCode))
+            .issuer(Address.of(issuerAddress))
+            .value(value.toPlainString())
+            .build();
+    }
+    
+    public static BigDecimal getCurrencyValue(CurrencyAmount amount) {
+        if (amount instanceof IssuedCurrencyAmount) {
+            return new BigDecimal(((IssuedCurrencyAmount) amount).value());
+        }
+        return ((XrpCurrencyAmount) amount).toXrp();
+    }
+    
+    public static String getCurrencyKey(String currencyCode, String issuerAddress) {
+        if (isXrp(currencyCode)) {
+            return XRP_CURRENCY_CODE + ":";
+        }
+        return toCurrencyCode(currencyCode) + ":" + issuerAddress.trim();
+    }
+    
+    public static String getCurrencyKey(CurrencyAmount amount) {
+        if (amount instanceof IssuedCurrencyAmount) {
+            final IssuedCurrencyAmount issuedAmount = (IssuedCurrencyAmount) amount;
+            return getCurrencyKey(issuedAmount.currency(), issuedAmount.issuer().value());
+        }
+        return getCurrencyKey(XRP_CURRENCY_CODE, null);
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02X", b));
+        }
+        return hex.toString();
+    }
+    
     public static UnsignedInteger getLastLedgerSequence(LedgerIndex validatedLedger) {
         final UnsignedInteger lastLedgerSequence = UnsignedInteger.valueOf(validatedLedger.plus(UnsignedLong.valueOf(4)).unsignedLongValue().intValue());
         